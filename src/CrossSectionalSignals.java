@@ -0,0 +1,129 @@
+import java.util.*;
+
+// Evaluates a signal rule across the whole universe for a day (or a block of days) in one pass over
+// primitive indicator columns, producing packed long/short masks per day: bit t of a day's mask is ticker t
+public class CrossSectionalSignals {
+
+    private final String[] tickers;
+    private final int numDays;
+    private final int wordsPerDay;
+    private final long[] longMasks;  // day-major: words [day * wordsPerDay, (day + 1) * wordsPerDay)
+    private final long[] shortMasks;
+
+    public CrossSectionalSignals(String[] tickers, int numDays) {
+        this.tickers = tickers;
+        this.numDays = numDays;
+        this.wordsPerDay = (tickers.length + 63) >>> 6;
+        this.longMasks = new long[numDays * wordsPerDay];
+        this.shortMasks = new long[numDays * wordsPerDay];
+    }
+
+    public CrossSectionalSignals(IndicatorColumns columns) {
+        this(columns.getTickers(), columns.getNumDays());
+    }
+
+    // Evaluate a rule for every day in [fromDay, toDay)
+    public void evaluate(SignalRule rule, IndicatorColumns columns, int fromDay, int toDay) {
+        for (int day = fromDay; day < toDay; day++) {
+            rule.evaluate(columns, day, longMasks, shortMasks, day * wordsPerDay);
+        }
+    }
+
+    public void evaluate(SignalRule rule, IndicatorColumns columns) {
+        evaluate(rule, columns, 0, numDays);
+    }
+
+    // Equal-weight P&L in the same form as the per-ticker backtests: each long signal adds
+    // returnPerSignal, each short subtracts it, averaged over the universe
+    public List<Double> dailyReturns(double returnPerSignal) {
+        List<Double> dailyPortfolioReturns = new ArrayList<>(numDays);
+        for (int day = 0; day < numDays; day++) {
+            dailyPortfolioReturns.add((longCount(day) - shortCount(day)) * returnPerSignal / tickers.length);
+        }
+        return dailyPortfolioReturns;
+    }
+
+    public int longCount(int day) {
+        return bitCount(longMasks, day);
+    }
+
+    public int shortCount(int day) {
+        return bitCount(shortMasks, day);
+    }
+
+    public BitSet longSignals(int day) {
+        return BitSet.valueOf(Arrays.copyOfRange(longMasks, day * wordsPerDay, (day + 1) * wordsPerDay));
+    }
+
+    public BitSet shortSignals(int day) {
+        return BitSet.valueOf(Arrays.copyOfRange(shortMasks, day * wordsPerDay, (day + 1) * wordsPerDay));
+    }
+
+    // Raw masks for consumers that want to walk the words directly instead of copying into a BitSet
+    public long[] getLongMasks() { return longMasks; }
+    public long[] getShortMasks() { return shortMasks; }
+    public int getWordsPerDay() { return wordsPerDay; }
+    public String[] getTickers() { return tickers; }
+    public int getNumDays() { return numDays; }
+
+    private int bitCount(long[] masks, int day) {
+        int count = 0;
+        for (int w = day * wordsPerDay, end = w + wordsPerDay; w < end; w++) {
+            count += Long.bitCount(masks[w]);
+        }
+        return count;
+    }
+
+    // RSI + EMA crossover rule from TradingStrategy: short when RSI > 60 and the slow EMA is below the fast one,
+    // buy when RSI < 40 and the fast EMA is below the slow one
+    public static SignalRule crossoverRsi(String rsiColumn, String fastEmaColumn, String slowEmaColumn) {
+        return (columns, day, longOut, shortOut, offset) -> {
+            double[] rsi = columns.get(rsiColumn)[day];
+            double[] fast = columns.get(fastEmaColumn)[day];
+            double[] slow = columns.get(slowEmaColumn)[day];
+            int n = rsi.length;
+
+            for (int w = 0, base = 0; base < n; w++, base += 64) {
+                int end = Math.min(base + 64, n);
+                long longWord = 0;
+                long shortWord = 0;
+                for (int t = base; t < end; t++) {
+                    // Non-short-circuit & keeps the inner loop branch-free
+                    boolean isShort = rsi[t] > 60 & slow[t] < fast[t];
+                    boolean isLong = !isShort & rsi[t] < 40 & fast[t] < slow[t];
+                    shortWord |= (isShort ? 1L : 0L) << (t - base);
+                    longWord |= (isLong ? 1L : 0L) << (t - base);
+                }
+                longOut[offset + w] = longWord;
+                shortOut[offset + w] = shortWord;
+            }
+        };
+    }
+
+    // Mean reversion rule from MeanReversionTradingStrategy: short when price is 5% above its SMA or above the
+    // predicted price, otherwise buy when it is 5% below its SMA or below the predicted price
+    public static SignalRule meanReversion(String priceColumn, String smaColumn, String predictedColumn) {
+        return (columns, day, longOut, shortOut, offset) -> {
+            double[] price = columns.get(priceColumn)[day];
+            double[] sma = columns.get(smaColumn)[day];
+            double[] predicted = columns.get(predictedColumn)[day];
+            int n = price.length;
+
+            for (int w = 0, base = 0; base < n; w++, base += 64) {
+                int end = Math.min(base + 64, n);
+                long longWord = 0;
+                long shortWord = 0;
+                for (int t = base; t < end; t++) {
+                    // A NaN SMA means the ticker is still warming up, so it gets no signal at all
+                    boolean valid = sma[t] == sma[t];
+                    boolean isShort = valid & (price[t] > sma[t] * 1.05 | price[t] > predicted[t]);
+                    boolean isLong = valid & !isShort & (price[t] < sma[t] * 0.95 | price[t] < predicted[t]);
+                    shortWord |= (isShort ? 1L : 0L) << (t - base);
+                    longWord |= (isLong ? 1L : 0L) << (t - base);
+                }
+                longOut[offset + w] = longWord;
+                shortOut[offset + w] = shortWord;
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class EMA {
@@ -40,4 +41,28 @@ public class EMA {
 
         return emaValues;
     }
+
+    // Same EMA in double precision with a real alpha (calculate rounds it to 0), indexed by day, NaN before day period - 1
+    public double[] calculateAligned(double[] priceData) {
+        double[] emaValues = new double[priceData.length];
+        Arrays.fill(emaValues, Double.NaN);
+        if (priceData.length < period) return emaValues;
+
+        double alpha = 2.0 / (period + 1);
+
+        double initialEma = 0;
+        for (int i = 0; i < period; i++) {
+            initialEma += priceData[i];
+        }
+        initialEma /= period;
+        emaValues[period - 1] = initialEma;
+
+        double prevEma = initialEma;
+        for (int i = period; i < priceData.length; i++) {
+            prevEma = priceData[i] * alpha + prevEma * (1 - alpha);
+            emaValues[i] = prevEma;
+        }
+
+        return emaValues;
+    }
 }
@@ -0,0 +1,67 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Primitive indicator columns laid out day-major ([day][ticker]) so a day's cross-section is contiguous
+public class IndicatorColumns {
+    public static final String PRICE = "price";
+
+    private final String[] tickers;
+    private final int numDays;
+    private final double[][] prices; // ticker-major, used as indicator input
+    private final Map<String, double[][]> columns = new HashMap<>();
+
+    public IndicatorColumns(String[] tickers, double[][] prices) {
+        this.tickers = tickers;
+        this.prices = prices;
+        this.numDays = prices.length == 0 ? 0 : prices[0].length;
+        columns.put(PRICE, transpose(prices));
+    }
+
+    public static IndicatorColumns fromStockData(Map<String, List<Stock>> stockDataMap) {
+        String[] tickers = stockDataMap.keySet().toArray(new String[0]);
+        int numDays = stockDataMap.values().iterator().next().size();
+        double[][] prices = new double[tickers.length][numDays];
+
+        for (int t = 0; t < tickers.length; t++) {
+            List<Stock> stockPrices = stockDataMap.get(tickers[t]);
+            for (int day = 0; day < numDays; day++) {
+                prices[t][day] = day < stockPrices.size() ? stockPrices.get(day).getAdjClose().doubleValue() : Double.NaN;
+            }
+        }
+
+        return new IndicatorColumns(tickers, prices);
+    }
+
+    // Compute an indicator per ticker over its price series and store it as a day-major column
+    public IndicatorColumns add(String name, Function<double[], double[]> indicator) {
+        double[][] series = new double[tickers.length][];
+        for (int t = 0; t < tickers.length; t++) {
+            series[t] = indicator.apply(prices[t]);
+        }
+        columns.put(name, transpose(series));
+        return this;
+    }
+
+    public double[][] get(String name) {
+        double[][] column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown indicator column: " + name);
+        }
+        return column;
+    }
+
+    public String[] getTickers() { return tickers; }
+    public int getNumDays() { return numDays; }
+
+    private double[][] transpose(double[][] series) {
+        double[][] byDay = new double[numDays][tickers.length];
+        for (int t = 0; t < tickers.length; t++) {
+            for (int day = 0; day < numDays; day++) {
+                byDay[day][t] = series[t][day];
+            }
+        }
+        return byDay;
+    }
+}
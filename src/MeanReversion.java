@@ -4,28 +4,42 @@ import java.util.*;
 
 public class MeanReversion {
 
+    // Pass a directory as the first argument to also append the results to ResultsStore files there
     public static void main(String[] args) {
         // Step 1: Extract stock data
         String csvFile = "stock_data.csv"; // Replace with your file path
         Map<String, List<Stock>> stockDataMap = StockDataExtractor.extractData(csvFile);
 
-        // Step 2: Backtest the mean reversion strategy
-        List<Double> portfolioDailyReturns = MeanReversionTradingStrategy.backtestStrategy(stockDataMap);
-
-        // Step 3: Perform portfolio optimization using Monte Carlo simulation
-        PortfolioOptimization.optimizePortfolio(stockDataMap);
-
-        // Step 4: Evaluate backtesting metrics
-        backtest backtest = new backtest(portfolioDailyReturns, 0.04); // Assuming 4% annual risk-free rate
-
-        // Step 5: Calculate portfolio values based on daily returns and initial capital
-        List<Double> portfolioValues = calculatePortfolioValues(portfolioDailyReturns, 100000);
-
-        System.out.println("Sharpe Ratio: " + backtest.calculateSharpeRatio());
-        System.out.println("Maximum Drawdown: " + backtest.calculateMaxDrawdown(portfolioValues));
-        System.out.println("Win Rate: " + backtest.calculateWinRate());
-        System.out.println("Sortino Ratio: " + backtest.calculateSortinoRatio());
-        System.out.println("Annualized Returns: " + backtest.calculateAnnualizedReturns());
+        try (ResultsStore optimizationResults = TradingSystem.openResults(args, TradingSystem.OPTIMIZATION_RESULTS,
+                     stockDataMap.keySet().toArray(new String[0]));
+             ResultsStore backtestResults = TradingSystem.openResults(args, TradingSystem.BACKTEST_RESULTS,
+                     TradingSystem.BACKTEST_PARAMS)) {
+            // Step 2: Backtest the mean reversion strategy (cross-sectional signals; see backtestStrategyCrossSectional
+            // for how they differ from the per-ticker backtestStrategy)
+            List<Double> portfolioDailyReturns = MeanReversionTradingStrategy.backtestStrategyCrossSectional(stockDataMap);
+
+            // Step 3: Perform portfolio optimization using Monte Carlo simulation
+            List<BigDecimal> optimalWeights = PortfolioOptimization.optimizePortfolio(stockDataMap, optimizationResults);
+
+            // Step 4: Evaluate backtesting metrics
+            backtest backtest = new backtest(portfolioDailyReturns, 0.04); // Assuming 4% annual risk-free rate
+
+            // Step 5: Calculate portfolio values based on daily returns and initial capital
+            List<Double> portfolioValues = calculatePortfolioValues(portfolioDailyReturns, 100000);
+
+            System.out.println("Sharpe Ratio: " + backtest.calculateSharpeRatio());
+            System.out.println("Maximum Drawdown: " + backtest.calculateMaxDrawdown(portfolioValues));
+            System.out.println("Win Rate: " + backtest.calculateWinRate());
+            System.out.println("Sortino Ratio: " + backtest.calculateSortinoRatio());
+            System.out.println("Annualized Returns: " + backtest.calculateAnnualizedReturns());
+            TradingSystem.recordBacktest(backtestResults, new double[]{TradingSystem.MEAN_REVERSION, 1, 0},
+                    portfolioDailyReturns, backtest, portfolioValues);
+
+            // Step 6: Hold the optimal weights with periodic rebalancing
+            TradingSystem.printRebalancedPortfolio(stockDataMap, optimalWeights, backtestResults);
+        } catch (java.io.IOException e) {
+            System.err.println("Error writing results: " + e.getMessage());
+        }
     }
 
     // Utility method to calculate portfolio values based on daily returns
@@ -85,6 +99,22 @@ class MeanReversionTradingStrategy {
         return dailyPortfolioReturns;
     }
 
+    // Cross-sectional version of backtestStrategy on primitive columns. The thresholds are the same, but the
+    // regression forecast only uses the five prices up to each day, whereas backtestStrategy fits the last five
+    // prices of the whole series and extrapolates to index size + 1, so the signals differ
+    public static List<Double> backtestStrategyCrossSectional(Map<String, List<Stock>> stockDataMap) {
+        IndicatorColumns columns = IndicatorColumns.fromStockData(stockDataMap)
+                .add("sma20", new SMA(20)::calculateAligned)
+                .add("predicted", prices -> LinearRegression.rollingForecast(prices, 5));
+
+        CrossSectionalSignals signals = new CrossSectionalSignals(columns);
+        signals.evaluate(CrossSectionalSignals.meanReversion(IndicatorColumns.PRICE, "sma20", "predicted"),
+                columns, 19, columns.getNumDays());
+
+        List<Double> dailyReturns = signals.dailyReturns(0.01);
+        return dailyReturns.subList(Math.min(19, dailyReturns.size()), dailyReturns.size());
+    }
+
     private static List<BigDecimal> getClosingPrices(List<Stock> stockPrices) {
         List<BigDecimal> prices = new ArrayList<>();
         for (Stock stock : stockPrices) {
@@ -127,6 +157,33 @@ class LinearRegression {
         // Predict the value at futureIndex
         return slope * futureIndex + intercept;
     }
+
+    // Next-day prediction from the trailing `period` prices up to each day, NaN until a full window is available
+    public static double[] rollingForecast(double[] prices, int period) {
+        double[] predicted = new double[prices.length];
+        Arrays.fill(predicted, Double.NaN);
+
+        double sumX = 0, sumX2 = 0;
+        for (int i = 1; i <= period; i++) {
+            sumX += i;
+            sumX2 += (double) i * i;
+        }
+        double denominator = period * sumX2 - sumX * sumX;
+
+        for (int day = period - 1; day < prices.length; day++) {
+            double sumY = 0, sumXY = 0;
+            for (int i = 0; i < period; i++) {
+                double y = prices[day - period + 1 + i];
+                sumY += y;
+                sumXY += (i + 1) * y;
+            }
+            double slope = (period * sumXY - sumX * sumY) / denominator;
+            double intercept = (sumY - slope * sumX) / period;
+            predicted[day] = slope * (period + 1) + intercept;
+        }
+
+        return predicted;
+    }
 }
 
 
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Daily portfolio simulator: holds a value per asset plus cash, lets positions drift with prices and
+// trades back to the target weights every rebalanceFrequency days, charging transactionCost on the traded notional.
+// All state lives in arrays sized up front, so the daily loop does not allocate.
+public class PortfolioSimulator {
+
+    private final int numAssets;
+    private final int rebalanceFrequency; // Trading days between rebalances, e.g. 21 for roughly monthly
+    private final double transactionCost; // Fraction of traded notional, e.g. 0.001 for 10 bps
+    private final double initialCapital;
+
+    private final double[] positions; // Market value held in each asset
+    private final double[] lastPrice; // Last valid price of each asset, NaN until it has one
+    private double cash;
+    private double nav;
+    private double totalTurnover;
+    private double totalCosts;
+
+    public PortfolioSimulator(int numAssets, int rebalanceFrequency, double transactionCost, double initialCapital) {
+        if (rebalanceFrequency < 1) {
+            throw new IllegalArgumentException("Rebalance frequency must be at least 1 day");
+        }
+        this.numAssets = numAssets;
+        this.rebalanceFrequency = rebalanceFrequency;
+        this.transactionCost = transactionCost;
+        this.initialCapital = initialCapital;
+        this.positions = new double[numAssets];
+        this.lastPrice = new double[numAssets];
+    }
+
+    // prices is day-major ([day][asset]), e.g. IndicatorColumns.get(IndicatorColumns.PRICE). The portfolio is
+    // invested at the target weights on the first day's close; the result has one return per following day.
+    // The first return is measured against initialCapital, so it includes the cost of that initial investment
+    // and compounding the series reproduces getNav(). A missing (NaN) or non-positive price leaves that asset's
+    // value unchanged until the next valid price, which then applies the whole move since the last valid one.
+    // An asset with no valid price yet is not bought; its target weight stays in cash
+    public double[] simulate(double[][] prices, double[] targetWeights) {
+        if (targetWeights.length != numAssets) {
+            throw new IllegalArgumentException("Expected " + numAssets + " weights, got " + targetWeights.length);
+        }
+
+        int numDays = prices.length;
+        double[] dailyReturns = new double[Math.max(numDays - 1, 0)];
+        Arrays.fill(positions, 0);
+        cash = initialCapital;
+        nav = initialCapital;
+        totalTurnover = 0;
+        totalCosts = 0;
+        if (numDays == 0) return dailyReturns;
+
+        for (int i = 0; i < numAssets; i++) {
+            double price = prices[0][i];
+            lastPrice[i] = price > 0 ? price : Double.NaN;
+        }
+        rebalance(targetWeights);
+
+        double previousNav = initialCapital;
+        for (int day = 1; day < numDays; day++) {
+            double[] current = prices[day];
+
+            double invested = 0;
+            for (int i = 0; i < numAssets; i++) {
+                double price = current[i];
+                // NaN fails the comparison, so a missing price keeps the position and the last valid price
+                if (price > 0) {
+                    if (lastPrice[i] > 0) {
+                        positions[i] *= price / lastPrice[i];
+                    }
+                    lastPrice[i] = price;
+                }
+                invested += positions[i];
+            }
+            nav = cash + invested;
+
+            if (day % rebalanceFrequency == 0) {
+                rebalance(targetWeights);
+            }
+
+            dailyReturns[day - 1] = nav / previousNav - 1;
+            previousNav = nav;
+        }
+
+        return dailyReturns;
+    }
+
+    // Trade to the target weights at the current NAV. The cost is computed on the turnover needed to reach the
+    // pre-cost targets and then taken out of the whole portfolio pro rata, so weights stay exactly on target.
+    // Assets without a valid price yet get no position
+    private void rebalance(double[] targetWeights) {
+        double turnover = 0;
+        for (int i = 0; i < numAssets; i++) {
+            double weight = lastPrice[i] > 0 ? targetWeights[i] : 0;
+            turnover += Math.abs(weight * nav - positions[i]);
+        }
+        double cost = turnover * transactionCost;
+        nav -= cost;
+
+        double invested = 0;
+        for (int i = 0; i < numAssets; i++) {
+            positions[i] = lastPrice[i] > 0 ? targetWeights[i] * nav : 0;
+            invested += positions[i];
+        }
+        cash = nav - invested;
+
+        totalTurnover += turnover;
+        totalCosts += cost;
+    }
+
+    // Boxes the series once so it can be handed to backtest
+    public static List<Double> toList(double[] values) {
+        List<Double> list = new ArrayList<>(values.length);
+        for (double value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    // Getters for the state at the end of the last simulation
+    public double getNav() { return nav; }
+    public double getCash() { return cash; }
+    public double getTotalTurnover() { return totalTurnover; }
+    public double getTotalCosts() { return totalCosts; }
+}
@@ -1,5 +1,6 @@
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class RSI {
@@ -53,4 +54,39 @@ public class RSI {
 
         return rsiValues;
     }
+
+    // Double-precision RSI indexed by day; differs from calculate by up to ~0.5 points, which rounds at operand scale
+    public double[] calculateAligned(double[] priceData) {
+        double[] rsiValues = new double[priceData.length];
+        Arrays.fill(rsiValues, Double.NaN);
+        if (priceData.length <= period) return rsiValues;
+
+        double averageGain = 0;
+        double averageLoss = 0;
+
+        for (int i = 1; i <= period; i++) {
+            double change = priceData[i] - priceData[i - 1];
+            if (change > 0) {
+                averageGain += change;
+            } else {
+                averageLoss -= change;
+            }
+        }
+
+        averageGain /= period;
+        averageLoss /= period;
+
+        for (int i = period; i < priceData.length; i++) {
+            double change = priceData[i] - priceData[i - 1];
+            double gain = change > 0 ? change : 0;
+            double loss = change < 0 ? -change : 0;
+
+            averageGain = (averageGain * (period - 1) + gain) / period;
+            averageLoss = (averageLoss * (period - 1) + loss) / period;
+
+            rsiValues[i] = averageLoss == 0 ? 100 : 100 - 100 / (1 + averageGain / averageLoss);
+        }
+
+        return rsiValues;
+    }
 }
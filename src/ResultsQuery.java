@@ -0,0 +1,183 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Read-only view of a ResultsStore file. Each block is memory-mapped and rows are addressed by a global index;
+// filtering and sorting read single columns straight from the mapping. Sees the blocks flushed before it was opened.
+public class ResultsQuery implements Closeable {
+
+    private final String[] paramNames;
+    private final FileChannel channel;
+    private final Path returnsPath;
+    private final List<MappedByteBuffer> blocks = new ArrayList<>();
+    private final int[] blockStart; // first global row of each block, plus the total row count at the end
+
+    public ResultsQuery(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.returnsPath = ResultsStore.returnsPath(path);
+        ResultsStore.Header header;
+        try {
+            header = ResultsStore.readHeader(channel, path);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.paramNames = header.paramNames;
+
+        int columns = ResultsStore.columnCount(paramNames.length);
+        List<Integer> starts = new ArrayList<>();
+        int rows = 0;
+
+        // A torn write at the tail is skipped; the next ResultsStore opened on the file cuts it off
+        for (long[] entry : ResultsStore.scanBlocks(channel, header.size, columns)) {
+            int blockRows = (int) entry[1];
+            MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, entry[0],
+                    ResultsStore.blockBytes(blockRows, columns));
+            block.order(ByteOrder.LITTLE_ENDIAN);
+            blocks.add(block);
+            starts.add(rows);
+            rows += blockRows;
+        }
+
+        blockStart = new int[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            blockStart[i] = starts.get(i);
+        }
+        blockStart[starts.size()] = rows;
+    }
+
+    public int size() {
+        return blockStart[blocks.size()];
+    }
+
+    public String[] getParamNames() {
+        return paramNames.clone();
+    }
+
+    public long runId(int row) {
+        return longAt(row, 0);
+    }
+
+    public double parameter(int row, int param) {
+        return doubleAt(row, 1 + param);
+    }
+
+    public double[] parameters(int row) {
+        double[] values = new double[paramNames.length];
+        for (int p = 0; p < values.length; p++) {
+            values[p] = parameter(row, p);
+        }
+        return values;
+    }
+
+    public double metric(int row, ResultsStore.Metric metric) {
+        return doubleAt(row, 1 + paramNames.length + metric.ordinal());
+    }
+
+    // Empty if the run was stored without its daily returns
+    public double[] dailyReturns(int row) throws IOException {
+        int metricsEnd = 1 + paramNames.length + ResultsStore.Metric.values().length;
+        long offset = longAt(row, metricsEnd);
+        int length = (int) longAt(row, metricsEnd + 1);
+        double[] returns = new double[length];
+        if (length == 0) return returns;
+
+        try (FileChannel returnsChannel = FileChannel.open(returnsPath, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = returnsChannel.map(FileChannel.MapMode.READ_ONLY, offset, (long) length * Double.BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(returns);
+        }
+        return returns;
+    }
+
+    // Rows whose metric lies in [min, max], in file order
+    public int[] filter(ResultsStore.Metric metric, double min, double max) {
+        int column = 1 + paramNames.length + metric.ordinal();
+        int[] matches = new int[size()];
+        int found = 0;
+
+        for (int b = 0; b < blocks.size(); b++) {
+            MappedByteBuffer block = blocks.get(b);
+            int blockRows = blockStart[b + 1] - blockStart[b];
+            int base = Integer.BYTES + column * blockRows * Long.BYTES;
+            for (int i = 0; i < blockRows; i++) {
+                double value = block.getDouble(base + i * Long.BYTES);
+                if (value >= min && value <= max) {
+                    matches[found++] = blockStart[b] + i;
+                }
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    public int[] all() {
+        int[] rows = new int[size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    // Returns rows reordered by metric; NaN values sort last in either direction
+    public int[] sort(int[] rows, ResultsStore.Metric metric, boolean descending) {
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            values[i] = metric(rows[i], metric);
+        }
+
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            double x = values[a], y = values[b];
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                return Boolean.compare(Double.isNaN(x), Double.isNaN(y));
+            }
+            return descending ? Double.compare(y, x) : Double.compare(x, y);
+        });
+
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = rows[order[i]];
+        }
+        return sorted;
+    }
+
+    // The k best rows by metric, e.g. top(SHARPE_RATIO, 10, true) for the ten highest Sharpe ratios
+    public int[] top(ResultsStore.Metric metric, int k, boolean descending) {
+        int[] sorted = sort(all(), metric, descending);
+        return Arrays.copyOf(sorted, Math.min(k, sorted.length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private double doubleAt(int row, int column) {
+        int b = blockOf(row);
+        int blockRows = blockStart[b + 1] - blockStart[b];
+        return blocks.get(b).getDouble(Integer.BYTES + (column * blockRows + row - blockStart[b]) * Long.BYTES);
+    }
+
+    private long longAt(int row, int column) {
+        int b = blockOf(row);
+        int blockRows = blockStart[b + 1] - blockStart[b];
+        return blocks.get(b).getLong(Integer.BYTES + (column * blockRows + row - blockStart[b]) * Long.BYTES);
+    }
+
+    private int blockOf(int row) {
+        if (row < 0 || row >= size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size());
+        }
+        int b = Arrays.binarySearch(blockStart, 0, blocks.size(), row);
+        return b >= 0 ? b : -b - 2;
+    }
+}
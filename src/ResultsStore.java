@@ -0,0 +1,399 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Append-only binary store for backtest / optimization runs.
+//
+// File layout: a header (magic, version, parameter names) followed by blocks. Each block holds up to blockSize
+// rows stored column by column (row count, then runId[], each parameter[], each metric[], returnsOffset[],
+// returnsLength[]), so a query touches only the columns it filters or sorts on. Daily return series go to a
+// side file "<path>.returns" as raw doubles. Rows are buffered in primitive arrays and written one block at a
+// time, so appending a run costs a few array stores.
+public class ResultsStore implements Closeable {
+
+    static final int MAGIC = 0x42545253; // "BTRS"
+    static final int VERSION = 1;
+    static final int DEFAULT_BLOCK_SIZE = 4096;
+    static final int MAX_BLOCK_BYTES = 4 << 20; // Caps the default block size for wide stores, e.g. one column per ticker
+
+    public enum Metric {
+        PORTFOLIO_RETURN,
+        PORTFOLIO_VOLATILITY,
+        SHARPE_RATIO,
+        MAX_DRAWDOWN,
+        ANNUALIZED_RETURN
+    }
+
+    private static final int NUM_METRICS = Metric.values().length;
+
+    private final String[] paramNames;
+    private final int blockSize;
+    private final FileChannel channel;
+    private final FileChannel returnsChannel;
+
+    // Pending rows, flushed as one block
+    private final long[] runIds;
+    private final double[][] params;   // [param][row]
+    private final double[][] metrics;  // [metric][row]
+    private final long[] returnsOffsets;
+    private final long[] returnsLengths;
+    private int pending;
+    private long rowCount; // Rows written or pending, used to assign run ids
+
+    private final ByteBuffer blockBuffer;
+    private ByteBuffer returnsBuffer = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+    private long returnsPosition;
+
+    public ResultsStore(Path path, String[] paramNames) throws IOException {
+        this(path, paramNames, defaultBlockSize(paramNames.length));
+    }
+
+    // Opens path for appending, creating it if needed. An existing file must have the same parameter names.
+    // A torn block left at the tail by an interrupted write is cut off, together with any return series that
+    // only it referenced, so new blocks always follow the last complete one
+    public ResultsStore(Path path, String[] paramNames, int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1 row, got " + blockSize);
+        }
+        this.paramNames = paramNames.clone();
+        this.blockSize = blockSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.returnsChannel = FileChannel.open(returnsPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        try {
+            if (channel.size() == 0) {
+                writeHeader();
+                rowCount = 0;
+                returnsChannel.truncate(0);
+            } else {
+                Header header = readHeader(channel, path);
+                if (!Arrays.equals(header.paramNames, this.paramNames)) {
+                    throw new IllegalArgumentException("Parameter names " + Arrays.toString(paramNames)
+                            + " do not match existing store " + Arrays.toString(header.paramNames));
+                }
+                recoverTail(header);
+            }
+            channel.position(channel.size());
+            returnsPosition = returnsChannel.size();
+            returnsChannel.position(returnsPosition);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            returnsChannel.close();
+            throw e;
+        }
+
+        int numParams = paramNames.length;
+        this.runIds = new long[blockSize];
+        this.params = new double[numParams][blockSize];
+        this.metrics = new double[NUM_METRICS][blockSize];
+        this.returnsOffsets = new long[blockSize];
+        this.returnsLengths = new long[blockSize];
+        this.blockBuffer = ByteBuffer.allocate(Integer.BYTES + blockSize * Long.BYTES * columnCount(numParams))
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Appends a run under the next free run id (the number of rows already in the store) and returns that id,
+    // so ids stay unique when the store is reopened for another sweep
+    public synchronized long append(double[] parameters, PortfolioMetrics summary, List<Double> dailyReturns)
+            throws IOException {
+        long runId = rowCount;
+        append(runId, parameters, summary, dailyReturns);
+        return runId;
+    }
+
+    public synchronized void append(long runId, double[] parameters, PortfolioMetrics summary, List<Double> dailyReturns)
+            throws IOException {
+        append(runId, parameters,
+                toDouble(summary.getPortfolioReturn()), toDouble(summary.getPortfolioVolatility()),
+                toDouble(summary.getSharpeRatio()), toDouble(summary.getMaxDrawdown()),
+                toDouble(summary.getAnnualizedReturn()), toArray(dailyReturns));
+    }
+
+    // Auto-id variant for metrics that are not PortfolioMetrics, e.g. ones from backtest that may be NaN or infinite
+    public synchronized long append(double[] parameters, double portfolioReturn, double portfolioVolatility,
+                                    double sharpeRatio, double maxDrawdown, double annualizedReturn,
+                                    List<Double> dailyReturns) throws IOException {
+        long runId = rowCount;
+        append(runId, parameters, portfolioReturn, portfolioVolatility, sharpeRatio, maxDrawdown, annualizedReturn,
+                toArray(dailyReturns));
+        return runId;
+    }
+
+    // dailyReturns may be null when only the summary is wanted
+    public synchronized void append(long runId, double[] parameters, double portfolioReturn, double portfolioVolatility,
+                                    double sharpeRatio, double maxDrawdown, double annualizedReturn,
+                                    double[] dailyReturns) throws IOException {
+        if (parameters.length != paramNames.length) {
+            throw new IllegalArgumentException("Expected " + paramNames.length + " parameters, got " + parameters.length);
+        }
+
+        int row = pending;
+        runIds[row] = runId;
+        for (int p = 0; p < parameters.length; p++) {
+            params[p][row] = parameters[p];
+        }
+        metrics[Metric.PORTFOLIO_RETURN.ordinal()][row] = portfolioReturn;
+        metrics[Metric.PORTFOLIO_VOLATILITY.ordinal()][row] = portfolioVolatility;
+        metrics[Metric.SHARPE_RATIO.ordinal()][row] = sharpeRatio;
+        metrics[Metric.MAX_DRAWDOWN.ordinal()][row] = maxDrawdown;
+        metrics[Metric.ANNUALIZED_RETURN.ordinal()][row] = annualizedReturn;
+
+        if (dailyReturns != null) {
+            returnsOffsets[row] = returnsPosition + returnsBuffer.position();
+            returnsLengths[row] = dailyReturns.length;
+            bufferReturns(dailyReturns);
+        } else {
+            returnsOffsets[row] = 0;
+            returnsLengths[row] = 0;
+        }
+
+        rowCount++;
+        if (++pending == blockSize) {
+            flush();
+        }
+    }
+
+    // Writes any pending rows as a (possibly partial) block
+    public synchronized void flush() throws IOException {
+        if (pending == 0) return;
+
+        // Returns first, so a block never points past the end of the returns file
+        returnsBuffer.flip();
+        while (returnsBuffer.hasRemaining()) {
+            returnsChannel.write(returnsBuffer);
+        }
+        returnsPosition = returnsChannel.position();
+        returnsBuffer.clear();
+
+        blockBuffer.clear();
+        blockBuffer.putInt(pending);
+        for (int row = 0; row < pending; row++) blockBuffer.putLong(runIds[row]);
+        for (double[] column : params) {
+            for (int row = 0; row < pending; row++) blockBuffer.putDouble(column[row]);
+        }
+        for (double[] column : metrics) {
+            for (int row = 0; row < pending; row++) blockBuffer.putDouble(column[row]);
+        }
+        for (int row = 0; row < pending; row++) blockBuffer.putLong(returnsOffsets[row]);
+        for (int row = 0; row < pending; row++) blockBuffer.putLong(returnsLengths[row]);
+        blockBuffer.flip();
+        while (blockBuffer.hasRemaining()) {
+            channel.write(blockBuffer);
+        }
+
+        pending = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+            returnsChannel.close();
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public synchronized long getRowCount() {
+        return rowCount;
+    }
+
+    // Truncates both files to the last complete block and counts the rows already stored
+    private void recoverTail(Header header) throws IOException {
+        int columns = columnCount(paramNames.length);
+        long end = header.size;
+        long returnsEnd = 0;
+        rowCount = 0;
+
+        for (long[] block : scanBlocks(channel, header.size, columns)) {
+            long position = block[0];
+            int rows = (int) block[1];
+
+            // returnsOffset[] and returnsLength[] are the last two columns, stored back to back
+            ByteBuffer returns = ByteBuffer.allocate(2 * rows * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long returnsColumns = position + Integer.BYTES + (long) (columns - 2) * rows * Long.BYTES;
+            readFully(channel, returns, returnsColumns);
+            for (int row = 0; row < rows; row++) {
+                long length = returns.getLong((rows + row) * Long.BYTES);
+                if (length > 0) {
+                    returnsEnd = Math.max(returnsEnd, returns.getLong(row * Long.BYTES) + length * Double.BYTES);
+                }
+            }
+
+            rowCount += rows;
+            end = position + blockBytes(rows, columns);
+        }
+
+        if (channel.size() > end) {
+            channel.truncate(end);
+        }
+        if (returnsChannel.size() > returnsEnd) {
+            returnsChannel.truncate(returnsEnd);
+        }
+    }
+
+    // {position, rows} of every complete block after the header. Stops at the first block that is cut short or
+    // whose row count is not positive, which is what an interrupted write leaves behind
+    static List<long[]> scanBlocks(FileChannel channel, long position, int columns) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (position + Integer.BYTES <= size) {
+            count.clear();
+            channel.read(count, position);
+            count.flip();
+            int rows = count.getInt();
+            if (rows <= 0) break;
+            long bytes = blockBytes(rows, columns);
+            if (position + bytes > size) break;
+
+            blocks.add(new long[]{position, rows});
+            position += bytes;
+        }
+        return blocks;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of results store");
+            }
+        }
+        buffer.flip();
+    }
+
+    static long blockBytes(int rows, int columns) {
+        return Integer.BYTES + (long) rows * Long.BYTES * columns;
+    }
+
+    private void bufferReturns(double[] dailyReturns) {
+        int needed = dailyReturns.length * Double.BYTES;
+        if (returnsBuffer.remaining() < needed) {
+            int capacity = Math.max(returnsBuffer.capacity() * 2, returnsBuffer.position() + needed);
+            ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            returnsBuffer.flip();
+            grown.put(returnsBuffer);
+            returnsBuffer = grown;
+        }
+        for (double r : dailyReturns) {
+            returnsBuffer.putDouble(r);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(paramNames)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(paramNames.length);
+        for (String name : paramNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            header.putInt(bytes.length);
+            header.put(bytes);
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    static Header readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(fixed, 0);
+        fixed.flip();
+        if (fixed.remaining() < 3 * Integer.BYTES || fixed.getInt() != MAGIC) {
+            throw new IOException("Not a results store: " + path);
+        }
+        int version = fixed.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported results store version " + version + ": " + path);
+        }
+
+        int numParams = fixed.getInt();
+        if (numParams < 0) {
+            throw new IOException("Corrupt results store header: " + path);
+        }
+        String[] names = new String[numParams];
+        long position = 3 * Integer.BYTES;
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < names.length; i++) {
+            length.clear();
+            channel.read(length, position);
+            length.flip();
+            int nameLength = length.remaining() == Integer.BYTES ? length.getInt() : -1;
+            if (nameLength < 0 || position + Integer.BYTES + nameLength > channel.size()) {
+                throw new IOException("Corrupt results store header: " + path);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(nameLength);
+            channel.read(bytes, position + Integer.BYTES);
+            names[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+            position += Integer.BYTES + bytes.capacity();
+        }
+        return new Header(names, position);
+    }
+
+    static int headerSize(String[] paramNames) {
+        int size = 3 * Integer.BYTES;
+        for (String name : paramNames) {
+            size += Integer.BYTES + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    // runId, parameters, metrics, returnsOffset, returnsLength
+    static int columnCount(int numParams) {
+        return 1 + numParams + NUM_METRICS + 2;
+    }
+
+    static Path returnsPath(Path path) {
+        return Paths.get(path.toString() + ".returns");
+    }
+
+    // Rows per block such that a block (and each of the pending column buffers) stays within MAX_BLOCK_BYTES
+    static int defaultBlockSize(int numParams) {
+        long rowBytes = (long) columnCount(numParams) * Long.BYTES;
+        return (int) Math.max(1, Math.min(DEFAULT_BLOCK_SIZE, MAX_BLOCK_BYTES / rowBytes));
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
+    private static double[] toArray(List<Double> values) {
+        if (values == null) return null;
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    static final class Header {
+        final String[] paramNames;
+        final long size;
+
+        Header(String[] paramNames, long size) {
+            this.paramNames = paramNames;
+            this.size = size;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class SMA {
 
@@ -25,5 +26,24 @@ public class SMA {
 
         return smaValues;
     }
-}
 
+    // Rolling-sum SMA indexed by day (NaN before day period - 1), O(1) per day instead of O(period)
+    public double[] calculateAligned(double[] priceData) {
+        double[] smaValues = new double[priceData.length];
+        Arrays.fill(smaValues, Double.NaN);
+        if (priceData.length < period) return smaValues;
+
+        double sum = 0;
+        for (int i = 0; i < priceData.length; i++) {
+            sum += priceData[i];
+            if (i >= period) {
+                sum -= priceData[i - period];
+            }
+            if (i >= period - 1) {
+                smaValues[i] = sum / period;
+            }
+        }
+
+        return smaValues;
+    }
+}
@@ -0,0 +1,5 @@
+// A rule writes the packed long/short words for one day starting at offset in the output masks
+@FunctionalInterface
+public interface SignalRule {
+    void evaluate(IndicatorColumns columns, int day, long[] longOut, long[] shortOut, int offset);
+}
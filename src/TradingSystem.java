@@ -8,28 +8,104 @@ import java.util.*;
 // Main Class
 public class TradingSystem {
 
+    // Run results are also appended to ResultsStore files when a directory is given as the first argument
+    static final String OPTIMIZATION_RESULTS = "optimization.bin"; // One row per Monte Carlo run, weights per ticker
+    static final String BACKTEST_RESULTS = "backtests.bin";         // One row per backtest, with its daily returns
+    static final String[] BACKTEST_PARAMS = {"strategy", "rebalanceFrequency", "transactionCost"};
+
+    // Values of the "strategy" parameter in BACKTEST_RESULTS
+    static final int CROSSOVER_RSI = 0;
+    static final int MEAN_REVERSION = 1;
+    static final int REBALANCED_OPTIMAL = 2;
+
     public static void main(String[] args) {
         // Extract stock data
         String csvFile = "stock_data.csv";
         Map<String, List<Stock>> stockDataMap = StockDataExtractor.extractData(csvFile);
 
-        // Backtest the strategy
-        List<Double> portfolioDailyReturns = TradingStrategy.backtestStrategy(stockDataMap);
+        try (ResultsStore optimizationResults = openResults(args, OPTIMIZATION_RESULTS, stockDataMap.keySet().toArray(new String[0]));
+             ResultsStore backtestResults = openResults(args, BACKTEST_RESULTS, BACKTEST_PARAMS)) {
+            // Backtest the strategy (cross-sectional signals; see backtestStrategyCrossSectional for how they differ
+            // from the per-ticker backtestStrategy)
+            List<Double> portfolioDailyReturns = TradingStrategy.backtestStrategyCrossSectional(stockDataMap);
+
+            // Perform portfolio optimization using Monte Carlo simulation
+            List<BigDecimal> optimalWeights = PortfolioOptimization.optimizePortfolio(stockDataMap, optimizationResults);
 
-        // Perform portfolio optimization using Monte Carlo simulation
-        PortfolioOptimization.optimizePortfolio(stockDataMap);
+            // Backtesting metrics (using backtest class from your existing file)
+            backtest backtest = new backtest(portfolioDailyReturns, 0.04);
 
-        // Backtesting metrics (using backtest class from your existing file)
-        backtest backtest = new backtest(portfolioDailyReturns, 0.04);
+            // Calculate portfolio values based on daily returns and initial capital
+            List<Double> portfolioValues = calculatePortfolioValues(portfolioDailyReturns, 100000);
 
-        // Calculate portfolio values based on daily returns and initial capital
-        List<Double> portfolioValues = calculatePortfolioValues(portfolioDailyReturns, 100000);
+            System.out.println("Sharpe Ratio: " + backtest.calculateSharpeRatio());
+            System.out.println("Maximum Drawdown: " + backtest.calculateMaxDrawdown(portfolioValues));
+            System.out.println("Win Rate: " + backtest.calculateWinRate());
+            System.out.println("Sortino Ratio: " + backtest.calculateSortinoRatio());
+            System.out.println("Annualized Returns: " + backtest.calculateAnnualizedReturns());
+            recordBacktest(backtestResults, new double[]{CROSSOVER_RSI, 1, 0}, portfolioDailyReturns, backtest, portfolioValues);
+
+            // Hold the optimal weights, rebalancing monthly with 10 bps transaction costs
+            printRebalancedPortfolio(stockDataMap, optimalWeights, backtestResults);
+        } catch (IOException e) {
+            System.err.println("Error writing results: " + e.getMessage());
+        }
+    }
+
+    // Simulate holding the given weights (in stockDataMap key order), print its backtesting metrics and record them
+    // in backtestResults (when not null)
+    public static void printRebalancedPortfolio(Map<String, List<Stock>> stockDataMap, List<BigDecimal> weights,
+                                                ResultsStore backtestResults) throws IOException {
+        if (weights.isEmpty()) return;
+
+        int rebalanceFrequency = 21;
+        double transactionCost = 0.001;
+        IndicatorColumns columns = IndicatorColumns.fromStockData(stockDataMap);
+        PortfolioSimulator simulator = new PortfolioSimulator(weights.size(), rebalanceFrequency, transactionCost, 100000);
+        List<Double> simulatedReturns = PortfolioSimulator.toList(
+                simulator.simulate(columns.get(IndicatorColumns.PRICE), PortfolioOptimization.toDoubles(weights)));
+
+        backtest backtest = new backtest(simulatedReturns, 0.0001); // Daily risk-free rate
+        List<Double> portfolioValues = calculatePortfolioValues(simulatedReturns, 100000);
+
+        System.out.println("Rebalanced Portfolio NAV: " + simulator.getNav());
+        System.out.println("Rebalanced Portfolio Transaction Costs: " + simulator.getTotalCosts());
+        System.out.println("Rebalanced Portfolio Sharpe Ratio: " + backtest.calculateSharpeRatio());
+        System.out.println("Rebalanced Portfolio Maximum Drawdown: " + backtest.calculateMaxDrawdown(portfolioValues));
+        System.out.println("Rebalanced Portfolio Annualized Returns: " + backtest.calculateAnnualizedReturns());
+        recordBacktest(backtestResults, new double[]{REBALANCED_OPTIMAL, rebalanceFrequency, transactionCost},
+                simulatedReturns, backtest, portfolioValues);
+    }
+
+    // Opens name inside the directory given as args[0], or returns null when no directory was given. A store left
+    // there by a run with different parameters (e.g. another ticker universe) is reported as an IOException
+    static ResultsStore openResults(String[] args, String name, String[] paramNames) throws IOException {
+        if (args.length == 0) return null;
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        Path path = directory.resolve(name);
+        try {
+            return new ResultsStore(path, paramNames);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cannot append to " + path + ": " + e.getMessage(), e);
+        }
+    }
 
-        System.out.println("Sharpe Ratio: " + backtest.calculateSharpeRatio());
-        System.out.println("Maximum Drawdown: " + backtest.calculateMaxDrawdown(portfolioValues));
-        System.out.println("Win Rate: " + backtest.calculateWinRate());
-        System.out.println("Sortino Ratio: " + backtest.calculateSortinoRatio());
-        System.out.println("Annualized Returns: " + backtest.calculateAnnualizedReturns());
+    // Append a backtest's summary and daily returns to store (when not null). Portfolio return and volatility are
+    // the mean and standard deviation of the daily returns; the rest come from backtest
+    static void recordBacktest(ResultsStore store, double[] parameters, List<Double> dailyReturns, backtest backtest,
+                               List<Double> portfolioValues) throws IOException {
+        if (store == null) return;
+
+        double mean = 0;
+        for (double r : dailyReturns) mean += r;
+        mean /= dailyReturns.size();
+        double variance = 0;
+        for (double r : dailyReturns) variance += (r - mean) * (r - mean);
+        variance /= dailyReturns.size();
+
+        store.append(parameters, mean, Math.sqrt(variance), backtest.calculateSharpeRatio(),
+                backtest.calculateMaxDrawdown(portfolioValues), backtest.calculateAnnualizedReturns(), dailyReturns);
     }
 
     // Calculate portfolio values based on daily returns and initial capital
@@ -118,6 +194,22 @@ class TradingStrategy {
         return dailyPortfolioReturns;
     }
 
+    // Cross-sectional version of backtestStrategy on primitive columns. The thresholds are the same, but the
+    // signals are not: the EMAs here actually move (EMA.calculate rounds alpha to 0, so backtestStrategy's EMAs
+    // stay at their initial SMA), and every indicator is read on the day it was computed for, whereas
+    // backtestStrategy reads all three at get(day - 26). Returns one entry per day, like backtestStrategy
+    public static List<Double> backtestStrategyCrossSectional(Map<String, List<Stock>> stockDataMap) {
+        IndicatorColumns columns = IndicatorColumns.fromStockData(stockDataMap)
+                .add("rsi14", new RSI(14)::calculateAligned)
+                .add("ema12", new EMA(10)::calculateAligned)
+                .add("ema26", new EMA(20)::calculateAligned);
+
+        CrossSectionalSignals signals = new CrossSectionalSignals(columns);
+        signals.evaluate(CrossSectionalSignals.crossoverRsi("rsi14", "ema12", "ema26"),
+                columns, Math.min(26, columns.getNumDays()), columns.getNumDays());
+        return signals.dailyReturns(0.01);
+    }
+
     private static List<BigDecimal> getClosingPrices(List<Stock> stockPrices) {
         List<BigDecimal> prices = new ArrayList<>();
         for (Stock stock : stockPrices) {
@@ -129,7 +221,14 @@ class TradingStrategy {
 
 // PortfolioOptimization
 class PortfolioOptimization {
-    public static void optimizePortfolio(Map<String, List<Stock>> stockDataMap) {
+    public static List<BigDecimal> optimizePortfolio(Map<String, List<Stock>> stockDataMap) {
+        return optimizePortfolio(stockDataMap, null);
+    }
+
+    // Same simulation, additionally appending every run's weights and metrics to resultsStore (when not null).
+    // Weights are stored in stockDataMap key order, so the store should be opened with those keys as parameter names.
+    // Returns the optimal weights in the same order
+    public static List<BigDecimal> optimizePortfolio(Map<String, List<Stock>> stockDataMap, ResultsStore resultsStore) {
         // Monte Carlo simulation to find optimal weights
         int numSimulations = 100;
         int numStocks = stockDataMap.size();
@@ -141,6 +240,15 @@ class PortfolioOptimization {
             List<BigDecimal> weights = generateRandomWeights(numStocks, random);
             PortfolioMetrics metrics = calculatePortfolioMetrics(stockDataMap, weights);
 
+            if (resultsStore != null) {
+                try {
+                    resultsStore.append(toDoubles(weights), metrics, null);
+                } catch (IOException e) {
+                    System.err.println("Error writing results: " + e.getMessage());
+                    resultsStore = null;
+                }
+            }
+
             if (metrics.getSharpeRatio().compareTo(bestSharpeRatio) > 0) {
                 bestSharpeRatio = metrics.getSharpeRatio();
                 optimalWeights = weights;
@@ -151,6 +259,15 @@ class PortfolioOptimization {
         for (BigDecimal weight : optimalWeights) {
             System.out.println(weight.multiply(BigDecimal.valueOf(100)) + "%");
         }
+        return optimalWeights;
+    }
+
+    static double[] toDoubles(List<BigDecimal> weights) {
+        double[] values = new double[weights.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = weights.get(i).doubleValue();
+        }
+        return values;
     }
 
     private static List<BigDecimal> generateRandomWeights(int numStocks, Random random) {
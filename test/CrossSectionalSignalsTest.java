@@ -0,0 +1,152 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Checks the packed cross-sectional masks against the same rules evaluated one ticker at a time
+public class CrossSectionalSignalsTest {
+
+    private static String[] tickers;
+    private static double[][] prices;           // [ticker][day]
+    private static List<List<BigDecimal>> closePrices; // Same prices, as the BigDecimal indicators take them
+
+    // Reads stock_data.csv directly, so the test only goes through IndicatorColumns and the indicator classes
+    @BeforeClass
+    public static void loadData() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("stock_data.csv"));
+        String[] headers = lines.get(0).split(",");
+        tickers = Arrays.copyOfRange(headers, 1, headers.length);
+        int numDays = lines.size() - 1;
+        prices = new double[tickers.length][numDays];
+        closePrices = new ArrayList<>();
+        for (int t = 0; t < tickers.length; t++) {
+            closePrices.add(new ArrayList<>());
+        }
+
+        for (int day = 0; day < numDays; day++) {
+            String[] values = lines.get(day + 1).split(",");
+            for (int t = 0; t < tickers.length; t++) {
+                BigDecimal price = new BigDecimal(values[t + 1]);
+                prices[t][day] = price.doubleValue();
+                closePrices.get(t).add(price);
+            }
+        }
+    }
+
+    @Test
+    public void crossoverRsiMatchesPerTickerEvaluation() {
+        IndicatorColumns columns = new IndicatorColumns(tickers, prices)
+                .add("rsi14", new RSI(14)::calculateAligned)
+                .add("ema12", new EMA(10)::calculateAligned)
+                .add("ema26", new EMA(20)::calculateAligned);
+        CrossSectionalSignals signals = new CrossSectionalSignals(columns);
+        signals.evaluate(CrossSectionalSignals.crossoverRsi("rsi14", "ema12", "ema26"), columns);
+
+        int signalDays = 0;
+        for (int t = 0; t < tickers.length; t++) {
+            double[] rsi = new RSI(14).calculateAligned(prices[t]);
+            double[] fast = new EMA(10).calculateAligned(prices[t]);
+            double[] slow = new EMA(20).calculateAligned(prices[t]);
+
+            for (int day = 0; day < columns.getNumDays(); day++) {
+                boolean isShort = rsi[day] > 60 && slow[day] < fast[day];
+                boolean isLong = !isShort && rsi[day] < 40 && fast[day] < slow[day];
+                assertEquals(tickers[t] + " short on day " + day, isShort, signals.shortSignals(day).get(t));
+                assertEquals(tickers[t] + " long on day " + day, isLong, signals.longSignals(day).get(t));
+                if (isShort || isLong) signalDays++;
+            }
+        }
+        assertTrue("rule should fire on the sample data", signalDays > 0);
+        assertEquals(columns.getNumDays(), signals.dailyReturns(0.01).size());
+    }
+
+    @Test
+    public void meanReversionMatchesPerTickerEvaluation() {
+        // Any forecast column exercises the rule; a short EMA stands in for the regression forecast
+        IndicatorColumns columns = new IndicatorColumns(tickers, prices)
+                .add("sma20", new SMA(20)::calculateAligned)
+                .add("predicted", new EMA(5)::calculateAligned);
+        CrossSectionalSignals signals = new CrossSectionalSignals(columns);
+        signals.evaluate(CrossSectionalSignals.meanReversion(IndicatorColumns.PRICE, "sma20", "predicted"), columns);
+
+        for (int t = 0; t < tickers.length; t++) {
+            double[] price = prices[t];
+            double[] sma = new SMA(20).calculateAligned(price);
+            double[] predicted = new EMA(5).calculateAligned(price);
+
+            for (int day = 0; day < columns.getNumDays(); day++) {
+                boolean valid = !Double.isNaN(sma[day]);
+                boolean isShort = valid && (price[day] > sma[day] * 1.05 || price[day] > predicted[day]);
+                boolean isLong = valid && !isShort && (price[day] < sma[day] * 0.95 || price[day] < predicted[day]);
+                assertEquals(tickers[t] + " short on day " + day, isShort, signals.shortSignals(day).get(t));
+                assertEquals(tickers[t] + " long on day " + day, isLong, signals.longSignals(day).get(t));
+            }
+        }
+    }
+
+    @Test
+    public void masksSpanSeveralWordsPerDay() {
+        // 130 tickers needs three 64-bit words per day; ticker t is long exactly on days where day % (t + 1) == 0
+        int numTickers = 130;
+        int numDays = 50;
+        String[] tickers = new String[numTickers];
+        double[][] prices = new double[numTickers][numDays];
+        for (int t = 0; t < numTickers; t++) {
+            tickers[t] = "T" + t;
+            for (int day = 0; day < numDays; day++) {
+                prices[t][day] = day % (t + 1) == 0 ? 1 : 0;
+            }
+        }
+        IndicatorColumns columns = new IndicatorColumns(tickers, prices);
+        CrossSectionalSignals signals = new CrossSectionalSignals(columns);
+        assertEquals(3, signals.getWordsPerDay());
+
+        signals.evaluate((c, day, longOut, shortOut, offset) -> {
+            double[] flag = c.get(IndicatorColumns.PRICE)[day];
+            for (int t = 0; t < flag.length; t++) {
+                if (flag[t] > 0) longOut[offset + (t >>> 6)] |= 1L << (t & 63);
+                else shortOut[offset + (t >>> 6)] |= 1L << (t & 63);
+            }
+        }, columns);
+
+        List<Double> dailyReturns = signals.dailyReturns(0.01);
+        for (int day = 0; day < numDays; day++) {
+            int longs = 0;
+            for (int t = 0; t < numTickers; t++) {
+                boolean expected = day % (t + 1) == 0;
+                assertEquals(expected, signals.longSignals(day).get(t));
+                assertEquals(!expected, signals.shortSignals(day).get(t));
+                if (expected) longs++;
+            }
+            assertEquals(longs, signals.longCount(day));
+            assertEquals((longs - (numTickers - longs)) * 0.01 / numTickers, dailyReturns.get(day), 1e-15);
+        }
+    }
+
+    @Test
+    public void alignedIndicatorsTrackBigDecimalVersions() {
+        int aapl = Arrays.asList(tickers).indexOf("AAPL");
+        double[] price = prices[aapl];
+        List<BigDecimal> close = closePrices.get(aapl);
+
+        List<BigDecimal> sma = new SMA(20).calculate(close);
+        double[] smaAligned = new SMA(20).calculateAligned(price);
+        assertTrue(Double.isNaN(smaAligned[18]));
+        for (int i = 0; i < sma.size(); i++) {
+            assertEquals(sma.get(i).doubleValue(), smaAligned[i + 19], 1e-9);
+        }
+
+        // calculate(List) rounds at the operand scale, so only approximate agreement is expected
+        List<BigDecimal> rsi = new RSI(14).calculate(close);
+        double[] rsiAligned = new RSI(14).calculateAligned(price);
+        assertTrue(Double.isNaN(rsiAligned[13]));
+        for (int i = 0; i < rsi.size(); i++) {
+            assertEquals(rsi.get(i).doubleValue(), rsiAligned[i + 14], 0.5);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class PortfolioSimulatorTest {
+
+    @Test
+    public void compoundedReturnsReproduceNavIncludingInitialCost() {
+        int numDays = 500;
+        int numAssets = 50;
+        double[][] prices = randomWalk(numDays, numAssets, 7);
+        double[] weights = new double[numAssets];
+        Arrays.fill(weights, 1.0 / numAssets);
+
+        PortfolioSimulator simulator = new PortfolioSimulator(numAssets, 21, 0.001, 100000);
+        double[] dailyReturns = simulator.simulate(prices, weights);
+
+        assertEquals(numDays - 1, dailyReturns.length);
+        double compounded = 100000;
+        for (double r : dailyReturns) {
+            compounded *= 1 + r;
+        }
+        assertEquals(simulator.getNav(), compounded, 1e-6);
+        // The initial investment alone turns over the whole capital
+        assertTrue(simulator.getTotalCosts() > 100000 * 0.001);
+    }
+
+    @Test
+    public void singleAssetWithoutCostsFollowsPrice() {
+        PortfolioSimulator simulator = new PortfolioSimulator(1, 1, 0, 1);
+        double[] dailyReturns = simulator.simulate(new double[][]{{1}, {1.1}, {0.99}}, new double[]{1});
+
+        assertArrayEquals(new double[]{0.1, -0.1}, dailyReturns, 1e-12);
+        assertEquals(0.99, simulator.getNav(), 1e-12);
+        assertEquals(0, simulator.getTotalCosts(), 0);
+    }
+
+    @Test
+    public void chargesCostOnRebalanceTurnover() {
+        // Two assets at 50/50; asset 0 doubles on day 1, so rebalancing on day 2 trades 0.25 of the 1.5 NAV each way
+        double[][] prices = {{1, 1}, {2, 1}, {2, 1}};
+        PortfolioSimulator simulator = new PortfolioSimulator(2, 2, 0.01, 1);
+        double[] dailyReturns = simulator.simulate(prices, new double[]{0.5, 0.5});
+
+        double initialCost = 0.01;
+        double navAfterDay1 = (1 - initialCost) * 1.5;
+        double rebalanceCost = 0.01 * navAfterDay1 / 3; // |0.5 * nav - 2/3 nav| + |0.5 * nav - 1/3 nav|
+        assertEquals(navAfterDay1 - rebalanceCost, simulator.getNav(), 1e-12);
+        assertEquals(initialCost + rebalanceCost, simulator.getTotalCosts(), 1e-12);
+        assertEquals(navAfterDay1 - 1, dailyReturns[0], 1e-12);
+    }
+
+    @Test
+    public void carriesReturnAcrossMissingPrices() {
+        double[][] prices = {{1, 1}, {Double.NaN, 1.1}, {1.2, 1.1}};
+        PortfolioSimulator simulator = new PortfolioSimulator(2, 100, 0, 2);
+        double[] dailyReturns = simulator.simulate(prices, new double[]{0.5, 0.5});
+
+        // Day 1: asset 0 has no price and keeps its value, asset 1 gains 10% on its half
+        assertEquals(0.05, dailyReturns[0], 1e-12);
+        // Day 2: asset 0 gains 20% on its half, measured from its last valid price before the gap
+        assertEquals(2.3 / 2.1 - 1, dailyReturns[1], 1e-12);
+        assertEquals(2.3, simulator.getNav(), 1e-12);
+
+        PortfolioSimulator single = new PortfolioSimulator(1, 100, 0, 1);
+        assertArrayEquals(new double[]{0, 1}, single.simulate(new double[][]{{1}, {Double.NaN}, {2}}, new double[]{1}), 1e-12);
+        assertEquals(2, single.getNav(), 1e-12);
+    }
+
+    @Test
+    public void holdsUnpricedAssetInCashUntilItHasAPrice() {
+        // Asset 0 has no first-day price, so its half stays in cash until the daily rebalance after it gets one
+        double[][] prices = {{Double.NaN, 1}, {2, 1.1}, {4, 1.1}};
+        PortfolioSimulator simulator = new PortfolioSimulator(2, 1, 0, 2);
+        double[] dailyReturns = simulator.simulate(prices, new double[]{0.5, 0.5});
+
+        assertEquals(0.05, dailyReturns[0], 1e-12);
+        // Bought at 2 on day 1, so the move to 4 doubles its half of the 2.1 NAV
+        assertEquals(0.5, dailyReturns[1], 1e-12);
+        assertEquals(3.15, simulator.getNav(), 1e-12);
+    }
+
+    private static double[][] randomWalk(int numDays, int numAssets, long seed) {
+        Random random = new Random(seed);
+        double[][] prices = new double[numDays][numAssets];
+        Arrays.fill(prices[0], 100);
+        for (int day = 1; day < numDays; day++) {
+            for (int i = 0; i < numAssets; i++) {
+                prices[day][i] = prices[day - 1][i] * (1 + random.nextGaussian() * 0.02);
+            }
+        }
+        return prices;
+    }
+}
@@ -0,0 +1,229 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultsStoreTest {
+
+    private static final String[] PARAMS = {"fast", "slow"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = folder.getRoot().toPath().resolve("runs.bin");
+    }
+
+    @Test
+    public void roundTripsRowsAcrossBlocksAndReopens() throws IOException {
+        // Block size 4: rows 0-9 become blocks of 4, 4 and a partial 2 on close, then a reopen adds 3 more
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            for (int i = 0; i < 10; i++) {
+                appendRun(store, i);
+            }
+        }
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            assertEquals(10, store.getRowCount());
+            for (int i = 10; i < 13; i++) {
+                appendRun(store, i);
+            }
+        }
+
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(13, query.size());
+            assertArrayEquals(PARAMS, query.getParamNames());
+            for (int i = 0; i < 13; i++) {
+                assertEquals(i, query.runId(i));
+                assertArrayEquals(new double[]{i, 2 * i}, query.parameters(i), 0);
+                assertEquals(i * 0.01, query.metric(i, ResultsStore.Metric.PORTFOLIO_RETURN), 0);
+                assertEquals(0.2, query.metric(i, ResultsStore.Metric.PORTFOLIO_VOLATILITY), 0);
+                assertEquals(i % 5, query.metric(i, ResultsStore.Metric.SHARPE_RATIO), 0);
+                assertEquals(-i, query.metric(i, ResultsStore.Metric.MAX_DRAWDOWN), 0);
+                assertEquals(i * 0.1, query.metric(i, ResultsStore.Metric.ANNUALIZED_RETURN), 0);
+                assertArrayEquals(expectedReturns(i), query.dailyReturns(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void assignsRunIdsThatContinueAfterReopen() throws IOException {
+        PortfolioMetrics metrics = new PortfolioMetrics(java.math.BigDecimal.ONE, java.math.BigDecimal.ONE,
+                java.math.BigDecimal.ONE, java.math.BigDecimal.ZERO, java.math.BigDecimal.ONE);
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            assertEquals(0, store.append(new double[]{1, 2}, metrics, null));
+            assertEquals(1, store.append(new double[]{1, 2}, metrics, null));
+        }
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            assertEquals(2, store.append(new double[]{1, 2}, metrics, null));
+        }
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(2, query.runId(2));
+            assertEquals(0, query.dailyReturns(2).length);
+        }
+    }
+
+    @Test
+    public void filtersAndSortsByMetric() throws IOException {
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            for (int i = 0; i < 10; i++) {
+                appendRun(store, i);
+            }
+            store.append(10, new double[]{0, 0}, 0, 0, Double.NaN, 0, 0, null);
+        }
+
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            // Sharpe is i % 5
+            assertArrayEquals(new int[]{3, 4, 8, 9}, query.filter(ResultsStore.Metric.SHARPE_RATIO, 3, 4));
+            assertArrayEquals(new int[]{4, 9, 3}, query.top(ResultsStore.Metric.SHARPE_RATIO, 3, true));
+            int[] ascending = query.sort(query.all(), ResultsStore.Metric.SHARPE_RATIO, false);
+            assertEquals(0, ascending[0]);
+            assertEquals("NaN sorts last", 10, ascending[ascending.length - 1]);
+        }
+    }
+
+    @Test
+    public void recoversFromTornTail() throws IOException {
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            for (int i = 0; i < 6; i++) {
+                appendRun(store, i);
+            }
+        }
+        // Cut into the last block (rows 4-5), as an interrupted write would
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(4, query.size());
+        }
+
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            assertEquals(4, store.getRowCount());
+            for (int i = 4; i < 8; i++) {
+                appendRun(store, i);
+            }
+        }
+
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(8, query.size());
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i, query.runId(i));
+                assertArrayEquals(expectedReturns(i), query.dailyReturns(i), 0);
+            }
+        }
+        // The return series of the torn rows were dropped rather than left in between
+        long returnsBytes = 0;
+        for (int i = 0; i < 8; i++) {
+            returnsBytes += expectedReturns(i).length * (long) Double.BYTES;
+        }
+        assertEquals(returnsBytes, Files.size(ResultsStore.returnsPath(path)));
+    }
+
+    @Test
+    public void stopsAtNonPositiveRowCount() throws IOException {
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            appendRun(store, 0);
+        }
+        ByteBuffer garbage = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN).putInt(-7);
+        garbage.rewind();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(garbage);
+        }
+
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(1, query.size());
+        }
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            appendRun(store, 1);
+        }
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(2, query.size());
+            assertEquals(1, query.runId(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDifferentParameterNames() throws IOException {
+        new ResultsStore(path, PARAMS).close();
+        new ResultsStore(path, new String[]{"other"});
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotStores() throws IOException {
+        Files.write(path, "Date,MA,UNH\n".getBytes());
+        new ResultsStore(path, PARAMS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBlockSize() throws IOException {
+        new ResultsStore(path, PARAMS, 0);
+    }
+
+    @Test
+    public void boundsDefaultBlockSizeForWideStores() throws IOException {
+        String[] tickers = new String[5000];
+        for (int i = 0; i < tickers.length; i++) {
+            tickers[i] = "T" + i;
+        }
+        try (ResultsStore store = new ResultsStore(path, tickers)) {
+            long blockBytes = (long) store.getBlockSize() * ResultsStore.columnCount(tickers.length) * Long.BYTES;
+            assertTrue(store.getBlockSize() >= 1);
+            assertTrue(blockBytes <= ResultsStore.MAX_BLOCK_BYTES);
+        }
+        try (ResultsStore store = new ResultsStore(folder.getRoot().toPath().resolve("narrow.bin"), PARAMS)) {
+            assertEquals(ResultsStore.DEFAULT_BLOCK_SIZE, store.getBlockSize());
+        }
+    }
+
+    @Test
+    public void autoIdAppendTakesReturnsAsList() throws IOException {
+        try (ResultsStore store = new ResultsStore(path, PARAMS, 4)) {
+            appendRun(store, 0);
+            assertEquals(1, store.append(new double[]{3, 4}, 0.1, 0.2, Double.POSITIVE_INFINITY, 0.3, 0.4,
+                    java.util.Arrays.asList(0.5, -0.25)));
+        }
+        try (ResultsQuery query = new ResultsQuery(path)) {
+            assertEquals(1, query.runId(1));
+            assertEquals(Double.POSITIVE_INFINITY, query.metric(1, ResultsStore.Metric.SHARPE_RATIO), 0);
+            assertArrayEquals(new double[]{0.5, -0.25}, query.dailyReturns(1), 0);
+        }
+    }
+
+    @Test
+    public void openResultsReportsStoreFromAnotherUniverse() throws IOException {
+        String[] args = {folder.getRoot().toString()};
+        TradingSystem.openResults(args, "universe.bin", new String[]{"AAPL", "MSFT"}).close();
+        try {
+            TradingSystem.openResults(args, "universe.bin", new String[]{"AAPL", "NVDA"});
+            fail("expected an IOException for a different ticker universe");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("universe.bin"));
+        }
+        assertNull(TradingSystem.openResults(new String[0], "universe.bin", PARAMS));
+    }
+
+    private static void appendRun(ResultsStore store, int i) throws IOException {
+        store.append(i, new double[]{i, 2 * i}, i * 0.01, 0.2, i % 5, -i, i * 0.1, expectedReturns(i));
+    }
+
+    // Every other run is stored without a return series
+    private static double[] expectedReturns(int i) {
+        if (i % 2 == 1) return new double[0];
+        double[] returns = new double[i + 1];
+        for (int d = 0; d < returns.length; d++) {
+            returns[d] = i + d / 1000.0;
+        }
+        return returns;
+    }
+}